@@ -0,0 +1,567 @@
+package com.dustinredmond.liteorm;
+
+/*
+ *  Copyright 2020  Dustin K. Redmond
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.StringJoiner;
+import java.util.function.ToIntFunction;
+
+/**
+ * Streams the rows of a LiteORM table to and from CSV or
+ * newline-delimited JSON. Binary values are written as Base64,
+ * marked so that they are not confused with text: with a
+ * {@code base64:} prefix in CSV, where text starting with that
+ * prefix or a backslash is escaped with a leading backslash,
+ * and as a {@code {"$binary": ...}} object in NDJSON.
+ */
+final class DataTransfer {
+
+    private DataTransfer() {}
+
+    /**
+     * Writes the rows of one database's table, preceded by a
+     * CSV header row if {@code header} is set.
+     */
+    static long exportTo(Connection conn, String tableName, OutputStream out,
+                         LiteORM.Format format, boolean header) throws SQLException, IOException {
+        final String sql = String.format("SELECT * FROM %s", tableName);
+        long rows = 0;
+        Writer writer = new BufferedWriter(Channels.newWriter(Channels.newChannel(out),
+            StandardCharsets.UTF_8.newEncoder(), BUFFER_SIZE), BUFFER_SIZE);
+        try (PreparedStatement ps = conn.prepareStatement(sql); ResultSet rs = ps.executeQuery()) {
+            ResultSetMetaData md = rs.getMetaData();
+            int columns = md.getColumnCount();
+            String[] names = new String[columns];
+            for (int i = 0; i < columns; i++) {
+                names[i] = md.getColumnName(i + 1);
+            }
+            if (format == LiteORM.Format.CSV && header) {
+                for (int i = 0; i < columns; i++) {
+                    if (i > 0) {
+                        writer.write(',');
+                    }
+                    writeCsvField(writer, names[i]);
+                }
+                writer.write('\n');
+            }
+            while (rs.next()) {
+                if (format == LiteORM.Format.CSV) {
+                    for (int i = 0; i < columns; i++) {
+                        if (i > 0) {
+                            writer.write(',');
+                        }
+                        writeCsvValue(writer, rs.getObject(i + 1));
+                    }
+                } else {
+                    writer.write('{');
+                    for (int i = 0; i < columns; i++) {
+                        if (i > 0) {
+                            writer.write(',');
+                        }
+                        writeJsonString(writer, names[i]);
+                        writer.write(':');
+                        writeJsonValue(writer, rs.getObject(i + 1));
+                    }
+                    writer.write('}');
+                }
+                writer.write('\n');
+                rows++;
+            }
+        }
+        writer.flush();
+        return rows;
+    }
+
+    /**
+     * Inserts the rows read from the stream into one or more databases'
+     * tables. {@code shardOf} picks the database for each row from its
+     * ID, which is null if the row has none.
+     */
+    static long importFrom(List<Connection> conns, ToIntFunction<Object> shardOf, String tableName,
+                           InputStream in, LiteORM.Format format, LiteORM.ImportProgress progress)
+        throws SQLException, IOException {
+        BufferedReader reader = new BufferedReader(
+            new InputStreamReader(in, StandardCharsets.UTF_8), BUFFER_SIZE);
+        List<String> columns;
+        List<Object> firstRow = null;
+        if (format == LiteORM.Format.CSV) {
+            columns = readCsvRecord(reader);
+            if (columns == null) {
+                return 0;
+            }
+        } else {
+            Map<String, Object> first = readJsonRecord(reader);
+            if (first == null) {
+                return 0;
+            }
+            columns = new ArrayList<>(first.keySet());
+            firstRow = new ArrayList<>(first.values());
+        }
+
+        StringJoiner sjField = new StringJoiner(",");
+        StringJoiner sjValue = new StringJoiner(",");
+        for (String column : columns) {
+            sjField.add("\"" + column.replace("\"", "\"\"") + "\"");
+            sjValue.add("?");
+        }
+        final String sql = String.format("INSERT INTO %s (%s) VALUES (%s)",
+            tableName, sjField.toString(), sjValue.toString());
+
+        int idColumn = columns.indexOf("ID");
+
+        // a single transaction per database, SQLite otherwise syncs to disk after every row
+        boolean[] autoCommit = new boolean[conns.size()];
+        for (int i = 0; i < conns.size(); i++) {
+            autoCommit[i] = conns.get(i).getAutoCommit();
+            conns.get(i).setAutoCommit(false);
+        }
+        PreparedStatement[] statements = new PreparedStatement[conns.size()];
+        long rows = 0;
+        long start = System.nanoTime();
+        try {
+            List<Object> row = firstRow;
+            while (true) {
+                if (row == null) {
+                    row = readRow(reader, format, columns);
+                    if (row == null) {
+                        break;
+                    }
+                }
+                int shard = shardOf.applyAsInt(idColumn >= 0 && idColumn < row.size() ? row.get(idColumn) : null);
+                if (statements[shard] == null) {
+                    statements[shard] = conns.get(shard).prepareStatement(sql);
+                }
+                PreparedStatement ps = statements[shard];
+                for (int i = 0; i < columns.size(); i++) {
+                    ps.setObject(i + 1, i < row.size() ? row.get(i) : null);
+                }
+                ps.addBatch();
+                row = null;
+                if (++rows % BATCH_SIZE == 0) {
+                    executeBatches(statements);
+                    reportProgress(progress, rows, start);
+                }
+            }
+            executeBatches(statements);
+            for (Connection conn : conns) {
+                conn.commit();
+            }
+        } catch (SQLException | IOException | RuntimeException e) {
+            for (Connection conn : conns) {
+                try {
+                    conn.rollback();
+                } catch (SQLException ex) {
+                    e.addSuppressed(ex);
+                }
+            }
+            throw e;
+        } finally {
+            for (int i = 0; i < conns.size(); i++) {
+                if (statements[i] != null) {
+                    statements[i].close();
+                }
+                conns.get(i).setAutoCommit(autoCommit[i]);
+            }
+        }
+        if (rows % BATCH_SIZE != 0) {
+            reportProgress(progress, rows, start);
+        }
+        return rows;
+    }
+
+    private static void executeBatches(PreparedStatement[] statements) throws SQLException {
+        for (PreparedStatement ps : statements) {
+            if (ps != null) {
+                ps.executeBatch();
+            }
+        }
+    }
+
+    private static void reportProgress(LiteORM.ImportProgress progress, long rows, long start) {
+        if (progress == null) {
+            return;
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+        progress.update(rows, seconds > 0 ? rows / seconds : 0);
+    }
+
+    private static List<Object> readRow(BufferedReader reader, LiteORM.Format format,
+                                        List<String> columns) throws IOException {
+        if (format == LiteORM.Format.CSV) {
+            List<String> record;
+            do {
+                record = readCsvRecord(reader);
+                if (record == null) {
+                    return null;
+                }
+            } while (record.size() == 1 && record.get(0) == null); // blank line
+            List<Object> row = new ArrayList<>(record.size());
+            for (String field : record) {
+                row.add(decodeCsvValue(field));
+            }
+            return row;
+        }
+        Map<String, Object> record = readJsonRecord(reader);
+        if (record == null) {
+            return null;
+        }
+        List<Object> row = new ArrayList<>(columns.size());
+        for (String column : columns) {
+            row.add(record.get(column));
+        }
+        return row;
+    }
+
+    private static byte[] decodeBase64(String value) throws IOException {
+        try {
+            return Base64.getDecoder().decode(value);
+        } catch (IllegalArgumentException e) {
+            throw new IOException("Invalid Base64 binary value.", e);
+        }
+    }
+
+    private static void writeCsvValue(Writer writer, Object value) throws IOException {
+        // null is written as an empty field, the empty String as ""
+        if (value == null) {
+            return;
+        }
+        if (value instanceof byte[]) {
+            writeCsvField(writer, CSV_BINARY_PREFIX + Base64.getEncoder().encodeToString((byte[]) value));
+            return;
+        }
+        String s = value.toString();
+        if (s.startsWith(CSV_BINARY_PREFIX) || s.startsWith("\\")) {
+            s = "\\" + s;
+        }
+        writeCsvField(writer, s);
+    }
+
+    private static Object decodeCsvValue(String s) throws IOException {
+        if (s == null) {
+            return null;
+        } else if (s.startsWith("\\")) {
+            return s.substring(1);
+        } else if (s.startsWith(CSV_BINARY_PREFIX)) {
+            return decodeBase64(s.substring(CSV_BINARY_PREFIX.length()));
+        }
+        return s;
+    }
+
+    private static void writeCsvField(Writer writer, String s) throws IOException {
+        if (s.isEmpty() || s.indexOf(',') >= 0 || s.indexOf('"') >= 0
+            || s.indexOf('\n') >= 0 || s.indexOf('\r') >= 0) {
+            writer.write('"');
+            writer.write(s.replace("\"", "\"\""));
+            writer.write('"');
+        } else {
+            writer.write(s);
+        }
+    }
+
+    /**
+     * Reads a single CSV record, which may span several lines if
+     * a quoted field contains line breaks.
+     * @return The record's fields, null for unquoted empty fields,
+     * or null at the end of the stream.
+     */
+    private static List<String> readCsvRecord(BufferedReader reader) throws IOException {
+        int c = reader.read();
+        if (c == -1) {
+            return null;
+        }
+        List<String> fields = new ArrayList<>();
+        StringBuilder sb = new StringBuilder();
+        boolean quoted = false;
+        boolean inQuotes = false;
+        while (true) {
+            if (inQuotes) {
+                if (c == -1) {
+                    throw new IOException("Unterminated quoted CSV field.");
+                }
+                if (c == '"') {
+                    reader.mark(1);
+                    int next = reader.read();
+                    if (next == '"') {
+                        sb.append('"');
+                    } else {
+                        inQuotes = false;
+                        reader.reset();
+                    }
+                } else {
+                    sb.append((char) c);
+                }
+            } else if (c == '"') {
+                quoted = true;
+                inQuotes = true;
+            } else if (c == ',' || c == '\n' || c == '\r' || c == -1) {
+                fields.add(quoted || sb.length() > 0 ? sb.toString() : null);
+                sb.setLength(0);
+                quoted = false;
+                if (c == '\r') {
+                    reader.mark(1);
+                    if (reader.read() != '\n') {
+                        reader.reset();
+                    }
+                }
+                if (c != ',') {
+                    return fields;
+                }
+            } else {
+                sb.append((char) c);
+            }
+            c = reader.read();
+        }
+    }
+
+    private static void writeJsonValue(Writer writer, Object value) throws IOException {
+        if (value == null) {
+            writer.write("null");
+        } else if (value instanceof Number || value instanceof Boolean) {
+            writer.write(value.toString());
+        } else if (value instanceof byte[]) {
+            writer.write('{');
+            writeJsonString(writer, JSON_BINARY_KEY);
+            writer.write(':');
+            writeJsonString(writer, Base64.getEncoder().encodeToString((byte[]) value));
+            writer.write('}');
+        } else {
+            writeJsonString(writer, value.toString());
+        }
+    }
+
+    private static void writeJsonString(Writer writer, String s) throws IOException {
+        writer.write('"');
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            switch (c) {
+                case '"':
+                    writer.write("\\\"");
+                    break;
+                case '\\':
+                    writer.write("\\\\");
+                    break;
+                case '\n':
+                    writer.write("\\n");
+                    break;
+                case '\r':
+                    writer.write("\\r");
+                    break;
+                case '\t':
+                    writer.write("\\t");
+                    break;
+                default:
+                    if (c < 0x20) {
+                        writer.write(String.format("\\u%04x", (int) c));
+                    } else {
+                        writer.write(c);
+                    }
+                    break;
+            }
+        }
+        writer.write('"');
+    }
+
+    /**
+     * Reads the next non-blank line as a flat JSON object.
+     * @return The object's members in order, or null at the end of the stream.
+     */
+    private static Map<String, Object> readJsonRecord(BufferedReader reader) throws IOException {
+        String line;
+        do {
+            line = reader.readLine();
+            if (line == null) {
+                return null;
+            }
+            line = line.trim();
+        } while (line.isEmpty());
+        return new JsonParser(line).parseObject();
+    }
+
+    /**
+     * Minimal parser for the flat JSON objects written by
+     * {@link #exportTo(Connection, String, OutputStream, LiteORM.Format, boolean)}.
+     */
+    private static final class JsonParser {
+
+        private final String s;
+        private int pos;
+
+        private JsonParser(String s) {
+            this.s = s;
+        }
+
+        private Map<String, Object> parseObject() throws IOException {
+            Map<String, Object> members = new LinkedHashMap<>();
+            expect('{');
+            skipWhitespace();
+            if (peek() == '}') {
+                pos++;
+                return members;
+            }
+            while (true) {
+                skipWhitespace();
+                String key = parseString();
+                skipWhitespace();
+                expect(':');
+                skipWhitespace();
+                members.put(key, parseValue());
+                skipWhitespace();
+                char c = next();
+                if (c == '}') {
+                    return members;
+                } else if (c != ',') {
+                    throw error("Expected ',' or '}'");
+                }
+            }
+        }
+
+        private Object parseValue() throws IOException {
+            char c = peek();
+            if (c == '"') {
+                return parseString();
+            } else if (c == '{') {
+                Map<String, Object> members = parseObject();
+                Object binary = members.get(JSON_BINARY_KEY);
+                if (members.size() != 1 || !(binary instanceof String)) {
+                    throw error("Unsupported nested object");
+                }
+                return decodeBase64((String) binary);
+            } else if (s.startsWith("null", pos)) {
+                pos += 4;
+                return null;
+            } else if (s.startsWith("true", pos)) {
+                pos += 4;
+                return true;
+            } else if (s.startsWith("false", pos)) {
+                pos += 5;
+                return false;
+            }
+            int start = pos;
+            while (pos < s.length() && "+-.0123456789eE".indexOf(s.charAt(pos)) >= 0) {
+                pos++;
+            }
+            String number = s.substring(start, pos);
+            try {
+                if (number.indexOf('.') >= 0 || number.indexOf('e') >= 0 || number.indexOf('E') >= 0) {
+                    return Double.parseDouble(number);
+                }
+                return Long.parseLong(number);
+            } catch (NumberFormatException e) {
+                throw error("Invalid value");
+            }
+        }
+
+        private String parseString() throws IOException {
+            expect('"');
+            StringBuilder sb = new StringBuilder();
+            while (true) {
+                char c = next();
+                if (c == '"') {
+                    return sb.toString();
+                } else if (c != '\\') {
+                    sb.append(c);
+                    continue;
+                }
+                c = next();
+                switch (c) {
+                    case 'n':
+                        sb.append('\n');
+                        break;
+                    case 'r':
+                        sb.append('\r');
+                        break;
+                    case 't':
+                        sb.append('\t');
+                        break;
+                    case 'b':
+                        sb.append('\b');
+                        break;
+                    case 'f':
+                        sb.append('\f');
+                        break;
+                    case 'u':
+                        if (pos + 4 > s.length()) {
+                            throw error("Invalid escape");
+                        }
+                        try {
+                            sb.append((char) Integer.parseInt(s.substring(pos, pos + 4), 16));
+                        } catch (NumberFormatException e) {
+                            throw error("Invalid escape");
+                        }
+                        pos += 4;
+                        break;
+                    default:
+                        sb.append(c);
+                        break;
+                }
+            }
+        }
+
+        private void skipWhitespace() {
+            while (pos < s.length() && Character.isWhitespace(s.charAt(pos))) {
+                pos++;
+            }
+        }
+
+        private char peek() throws IOException {
+            if (pos >= s.length()) {
+                throw error("Unexpected end of line");
+            }
+            return s.charAt(pos);
+        }
+
+        private char next() throws IOException {
+            char c = peek();
+            pos++;
+            return c;
+        }
+
+        private void expect(char c) throws IOException {
+            if (next() != c) {
+                throw error("Expected '" + c + "'");
+            }
+        }
+
+        private IOException error(String message) {
+            return new IOException(String.format("%s at position %s of NDJSON line: %s", message, pos, s));
+        }
+    }
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final int BATCH_SIZE = 1000;
+    private static final String CSV_BINARY_PREFIX = "base64:";
+    private static final String JSON_BINARY_KEY = "$binary";
+
+}
@@ -0,0 +1,37 @@
+package com.dustinredmond.liteorm;
+
+/*
+ *  Copyright 2020  Dustin K. Redmond
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Marks an entity field, typically a large {@code byte[]} or BLOB,
+ * as lazily loaded. Lazy fields are left out of {@code findById()}
+ * and {@code findAll()}, and are only written by {@code update()}
+ * once set to a different object than the one last loaded or
+ * written, null included; a value changed in place, such as a
+ * modified array, is not written. Their values are retrieved with
+ * {@link LiteORM#loadLazy(String)} or streamed with
+ * {@link LiteORM#openLazyStream(String)}.
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.FIELD)
+public @interface Lazy {
+}
@@ -0,0 +1,139 @@
+package com.dustinredmond.liteorm;
+
+/*
+ *  Copyright 2020  Dustin K. Redmond
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+ * Reads a single column value in fixed-size chunks, each retrieved
+ * with a {@code substr()} query, so that only one chunk is held on
+ * the heap at a time. Each chunk is read in its own autocommit
+ * query, so that no lock is held between reads. Instead, every
+ * chunk is checked against the row's lazy version, which a trigger
+ * increments whenever a lazy column is rewritten, and an
+ * {@code IOException} is thrown if the value changed mid-stream.
+ */
+final class LazyInputStream extends InputStream {
+
+    private final Connection conn;
+    private final PreparedStatement ps;
+    private byte[] chunk = new byte[0];
+    private int chunkPos;
+    private long offset = 1; // substr() is 1-based
+    private boolean exhausted;
+    private boolean closed;
+    private Long version;
+
+    LazyInputStream(Connection conn, String sql, Object id) throws SQLException {
+        this.conn = conn;
+        try {
+            this.ps = conn.prepareStatement(sql);
+            ps.setInt(2, CHUNK_SIZE);
+            ps.setObject(3, id);
+        } catch (SQLException e) {
+            conn.close();
+            throw e;
+        }
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (!fill()) {
+            return -1;
+        }
+        return chunk[chunkPos++] & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+        if (!fill()) {
+            return -1;
+        }
+        int n = Math.min(len, chunk.length - chunkPos);
+        System.arraycopy(chunk, chunkPos, b, off, n);
+        chunkPos += n;
+        return n;
+    }
+
+    @Override
+    public int available() {
+        return chunk.length - chunkPos;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        exhausted = true;
+        try {
+            ps.close();
+        } catch (SQLException e) {
+            throw new IOException(e);
+        } finally {
+            try {
+                conn.close();
+            } catch (SQLException e) {
+                // the connection is being discarded anyway
+            }
+        }
+    }
+
+    private boolean fill() throws IOException {
+        if (chunkPos < chunk.length) {
+            return true;
+        }
+        if (exhausted) {
+            return false;
+        }
+        try {
+            ps.setLong(1, offset);
+            try (ResultSet rs = ps.executeQuery()) {
+                boolean found = rs.next();
+                if (version != null && (!found || rs.getLong(2) != version)) {
+                    throw new IOException("Value was changed or deleted while being streamed");
+                }
+                byte[] bytes = found ? rs.getBytes(1) : null;
+                chunk = bytes == null ? new byte[0] : bytes;
+                if (found) {
+                    version = rs.getLong(2);
+                }
+            }
+        } catch (SQLException e) {
+            throw new IOException(e);
+        }
+        chunkPos = 0;
+        offset += chunk.length;
+        if (chunk.length < CHUNK_SIZE) {
+            exhausted = true;
+        }
+        return chunk.length > 0;
+    }
+
+    // SQLite reads the whole value for each substr(), so keep the number of chunks low
+    private static final int CHUNK_SIZE = 16 * 1024 * 1024;
+
+}
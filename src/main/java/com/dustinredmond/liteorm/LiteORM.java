@@ -16,27 +16,49 @@ package com.dustinredmond.liteorm;
  *  limitations under the License.
  */
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.lang.reflect.Field;
 import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
 import java.sql.Connection;
 import java.sql.DriverManager;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.ResultSetMetaData;
 import java.sql.SQLException;
+import java.sql.Statement;
 import java.time.Instant;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.StringJoiner;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
 
 @SuppressWarnings("unused")
 public abstract class LiteORM<T> {
 
     public LiteORM() {
-        createTableIfNotExists(getClass());
+        if (!LiteORM.constructingRow.get()) {
+            createTableIfNotExists(getClass());
+        }
     }
 
     /**
@@ -50,12 +72,17 @@ public abstract class LiteORM<T> {
             T obj;
             try {
                 //noinspection unchecked
-                obj = (T) getClass().getDeclaredConstructor().newInstance();
+                obj = (T) newRowInstance(getClass());
             } catch (InvocationTargetException | NoSuchMethodException e) {
                 throw new RuntimeException("Unable to instantiate LiteORM. "
                     + "Ensure a default no-argument constructor is provided.", e);
             }
-            if (!populateObjectValues(obj, getTableName(), getProperties(), id)) {
+            if (getDbUrl(getClass(), id) == null) {
+                return null; // outside the ID range of every shard
+            }
+            HashMap<String, Object> params = new HashMap<>();
+            getColumnNames(getClass()).forEach(c -> params.put(c, null));
+            if (!populateObjectValues(obj, getTableName(), params, id)) {
                 return null;
             }
             return obj;
@@ -66,19 +93,49 @@ public abstract class LiteORM<T> {
 
     /**
      * Returns a List of all entities of this class.
+     * If the entity is sharded, all shards are queried in parallel.
      * @return List of all entities
      */
     public List<T> findAll() {
         return findAll(getClass(), getTableName());
     }
 
+    /**
+     * Returns the number of entities of this class.
+     * If the entity is sharded, all shards are counted in parallel.
+     * @return Number of entities
+     */
+    public long count() {
+        final String sql = String.format("SELECT COUNT(*) FROM %s", getTableName());
+        if (printSql) {
+            System.out.println(sql);
+        }
+        try {
+            List<Long> counts = queryShards(getClass(), conn -> {
+                try (PreparedStatement ps = conn.prepareStatement(sql); ResultSet rs = ps.executeQuery()) {
+                    rs.next();
+                    return Collections.singletonList(rs.getLong(1));
+                }
+            });
+            return counts.stream().mapToLong(Long::longValue).sum();
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
     /**
      * Updates the existing entity in the SQLite
      * database. This object's ID (id) property must
      * correspond to an entry in the SQLite database.
      */
     public void update() {
-        update(getTableName(), getProperties());
+        HashMap<String, Object> params = getProperties(true);
+        update(getClass(), getTableName(), params);
+        params.forEach((k, v) -> {
+            if (isLazyColumn(k)) {
+                storedLazyValues.put(k, v);
+            }
+        });
     }
 
     /**
@@ -87,7 +144,8 @@ public abstract class LiteORM<T> {
      * <p>ID will be created automatically by SQLite</p>
      */
     public void create() {
-        create(getTableName(), getProperties());
+        create(getClass(), getTableName(), getProperties());
+        recordLazyValues();
     }
 
     /**
@@ -96,7 +154,83 @@ public abstract class LiteORM<T> {
      * property or field being used as a search.
      */
     public void delete() {
-        delete(getTableName(), getProperties());
+        delete(getClass(), getTableName(), getProperties());
+    }
+
+    /**
+     * Retrieves the value of a field annotated with {@link Lazy}
+     * from the database and sets it on this entity.
+     * @param fieldName Name of the lazy field to load.
+     * @param <V> Type of the field.
+     * @return The field's value, which may be null.
+     */
+    public <V> V loadLazy(String fieldName) {
+        Field field = getLazyField(fieldName);
+        final String sql = String.format("SELECT %s FROM %s WHERE ID = ?",
+            camelToUpperSnakeCase(field.getName()), getTableName());
+        if (printSql) {
+            System.out.println(sql);
+        }
+        Object id = getProperties().get("ID");
+        try (Connection conn = connect(getClass(), ((Number) id).longValue());
+            PreparedStatement ps = conn.prepareStatement(sql)) {
+            ps.setObject(1, id);
+            ResultSet rs = ps.executeQuery();
+            Object value = rs.next() ? rs.getObject(1) : null;
+            field.setAccessible(true);
+            field.set(this, value);
+            storedLazyValues.put(camelToUpperSnakeCase(field.getName()), value);
+            //noinspection unchecked
+            return (V) value;
+        } catch (SQLException | IllegalAccessException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Opens a stream over the stored value of a field annotated
+     * with {@link Lazy}, without setting it on this entity. The value
+     * is read from the database in 16 MB chunks, so it never needs to
+     * fit on the heap at once. Text values are streamed as UTF-8.
+     * <p>The SQLite driver offers no incremental blob access, so SQLite
+     * reads the whole value for every chunk. Streaming is therefore
+     * slower than {@link #loadLazy(String)} for values much larger than
+     * a chunk, and is meant for values that should not be held on the
+     * heap, rather than for speed.</p>
+     * <p>Each chunk is read in its own query, so the stream holds a
+     * database connection until closed, but no lock between reads, and
+     * writers are not held up by it. If the value is rewritten or the
+     * entity deleted while the stream is open, the next read throws an
+     * {@code IOException} rather than mixing bytes of both values.</p>
+     * @param fieldName Name of the lazy field to stream.
+     * @return A stream of the field's stored bytes, empty if null.
+     */
+    public InputStream openLazyStream(String fieldName) {
+        Field field = getLazyField(fieldName);
+        final String sql = String.format("SELECT substr(CAST(%s AS BLOB), ?, ?), %s FROM %s WHERE ID = ?",
+            camelToUpperSnakeCase(field.getName()), LAZY_VERSION_COLUMN, getTableName());
+        if (printSql) {
+            System.out.println(sql);
+        }
+        Object id = getProperties().get("ID");
+        try {
+            return new LazyInputStream(connect(getClass(), ((Number) id).longValue()), sql, id);
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private Field getLazyField(String fieldName) {
+        try {
+            Field field = getClass().getDeclaredField(fieldName);
+            if (!field.isAnnotationPresent(Lazy.class)) {
+                throw new IllegalArgumentException(String.format("Field '%s' is not annotated with @Lazy.",
+                    fieldName));
+            }
+            return field;
+        } catch (NoSuchFieldException e) {
+            throw new IllegalArgumentException(e);
+        }
     }
 
     /**
@@ -117,7 +251,7 @@ public abstract class LiteORM<T> {
      * @throws SQLException If a database access error occurs
      */
     public List<T> toObjects(PreparedStatement ps) throws SQLException {
-        try (Connection conn = connect(); ResultSet rs = ps.executeQuery()) {
+        try (ResultSet rs = ps.executeQuery()) {
             return toObjects(rs);
         } finally {
             ps.close();
@@ -126,24 +260,167 @@ public abstract class LiteORM<T> {
 
     /**
      * Attempts to retrieve a list of objects from a SQL query as a String
+     * <p>If the entity is sharded, the query is run against all shards
+     * in parallel and the results are concatenated in shard order.
+     * ORDER BY, LIMIT and aggregates therefore apply per shard.</p>
      * @param query A SQL query as a String
      * @return A list of objects returned by the query.
      * @throws SQLException If a database access error occurs
      */
     public List<T> toObjects(String query) throws SQLException {
-        try (Connection conn = connect(); PreparedStatement ps = conn.prepareStatement(query)) {
-            return toObjects(ps);
+        return queryShards(getClass(), conn -> {
+            try (PreparedStatement ps = conn.prepareStatement(query); ResultSet rs = ps.executeQuery()) {
+                return toObjects(rs);
+            }
+        });
+    }
+
+    /**
+     * Writes all entities of this class to the passed stream,
+     * reading them from the database as they are written rather
+     * than loading them into memory first. The stream is flushed,
+     * but not closed.
+     * @param out Stream to write the entities to
+     * @param format Format in which to write the entities
+     * @return The number of entities written
+     * @throws IOException If unable to write to the stream
+     */
+    public long exportTo(OutputStream out, Format format) throws IOException {
+        long rows = 0;
+        boolean header = true;
+        for (String url : getDbUrls(getClass())) {
+            try (Connection conn = openConnection(url)) {
+                rows += DataTransfer.exportTo(conn, getTableName(), out, format, header);
+            } catch (SQLException e) {
+                throw new RuntimeException(e);
+            }
+            header = false;
         }
+        return rows;
+    }
+
+    /**
+     * Reads entities of this class from the passed stream, as written
+     * by {@link #exportTo(OutputStream, Format)}, and inserts them into
+     * the database, keeping their IDs. Entities are inserted in batches
+     * within a single transaction, so either all or none are imported,
+     * unless the entity is sharded. The stream is not closed.
+     * <p>If the entity is sharded, each entity goes to the shard its
+     * ID belongs to, and entities without an ID are spread over the
+     * shards. There is one transaction per shard, committed one after
+     * another, so if committing to a shard fails, the shards committed
+     * before it keep their entities.</p>
+     * @param in Stream to read the entities from
+     * @param format Format in which the entities were written
+     * @return The number of entities imported
+     * @throws IOException If unable to read or parse the stream
+     */
+    public long importFrom(InputStream in, Format format) throws IOException {
+        return importFrom(in, format, null);
+    }
+
+    /**
+     * Reads entities of this class from the passed stream, as written
+     * by {@link #exportTo(OutputStream, Format)}, and inserts them into
+     * the database, keeping their IDs. Entities are inserted in batches
+     * within a single transaction, so either all or none are imported,
+     * unless the entity is sharded. The stream is not closed.
+     * <p>If the entity is sharded, each entity goes to the shard its
+     * ID belongs to, and entities without an ID are spread over the
+     * shards. There is one transaction per shard, committed one after
+     * another, so if committing to a shard fails, the shards committed
+     * before it keep their entities.</p>
+     * @param in Stream to read the entities from
+     * @param format Format in which the entities were written
+     * @param progress Called with the number of entities imported so far
+     *                 and the throughput after each batch, may be null
+     * @return The number of entities imported
+     * @throws IOException If unable to read or parse the stream
+     */
+    public long importFrom(InputStream in, Format format, ImportProgress progress) throws IOException {
+        Class<?> modelClass = getClass();
+        List<String> urls = getDbUrls(modelClass);
+        List<Connection> conns = new ArrayList<>();
+        try {
+            for (String url : urls) {
+                conns.add(openConnection(url));
+            }
+            return DataTransfer.importFrom(conns, id -> {
+                if (id == null) {
+                    return nextShard(modelClass, urls.size());
+                }
+                long value = id instanceof Number ? ((Number) id).longValue() : Long.parseLong(id.toString());
+                int shard = getShard(value, urls.size());
+                if (shard < 0) {
+                    throw new IllegalArgumentException(String.format("ID %s does not belong to any shard of %s.",
+                        value, modelClass.getSimpleName()));
+                }
+                return shard;
+            }, getTableName(), in, format, progress);
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        } finally {
+            conns.forEach(LiteORM::closeQuietly);
+        }
+    }
+
+    /**
+     * Receives progress updates from
+     * {@link #importFrom(InputStream, Format, ImportProgress)}.
+     */
+    @FunctionalInterface
+    public interface ImportProgress {
+        /**
+         * Called after each batch of entities is inserted.
+         * @param rows Number of entities imported so far
+         * @param rowsPerSecond Average entities imported per second
+         *                      since the import started
+         */
+        void update(long rows, double rowsPerSecond);
+    }
+
+    /**
+     * Formats supported by {@link #exportTo(OutputStream, Format)}
+     * and {@link #importFrom(InputStream, Format)}.
+     */
+    public enum Format {
+        /** Comma-separated values with a header row of column names. */
+        CSV,
+        /** Newline-delimited JSON, one object per entity. */
+        NDJSON
     }
 
     private HashMap<String, Object> getProperties() {
+        return getProperties(false);
+    }
+
+    /**
+     * Collects the column values of this entity. Lazy fields are left
+     * out while null, as they have likely not been loaded, or, if
+     * {@code changedLazyOnly} is set, unless they no longer refer to the
+     * value last loaded or written, so that update() neither rewrites
+     * large values needlessly nor ignores a loaded value set to null.
+     */
+    private HashMap<String, Object> getProperties(boolean changedLazyOnly) {
         HashMap<String, Object> params = new HashMap<>();
         for (Field field: this.getClass().getDeclaredFields()) {
             //noinspection deprecation
             boolean wasAccessible = field.isAccessible();
             field.setAccessible(true);
             try {
-                if (field.get(this) == null) {
+                Object value = field.get(this);
+                if (field.isAnnotationPresent(Lazy.class)) {
+                    String column = camelToUpperSnakeCase(field.getName());
+                    boolean skip = changedLazyOnly && storedLazyValues.containsKey(column)
+                        ? storedLazyValues.get(column) == value
+                        : value == null;
+                    if (skip) {
+                        continue;
+                    }
+                    params.put(column, value);
+                    continue;
+                }
+                if (value == null) {
                     params.put(camelToUpperSnakeCase(field.getName()), null);
                     continue;
                 }
@@ -161,6 +438,28 @@ public abstract class LiteORM<T> {
         return params;
     }
 
+    private void recordLazyValues() {
+        for (Field field : getClass().getDeclaredFields()) {
+            if (field.isAnnotationPresent(Lazy.class)) {
+                field.setAccessible(true);
+                try {
+                    storedLazyValues.put(camelToUpperSnakeCase(field.getName()), field.get(this));
+                } catch (IllegalAccessException e) {
+                    throw new RuntimeException(e);
+                }
+            }
+        }
+    }
+
+    private boolean isLazyColumn(String column) {
+        for (Field field : getClass().getDeclaredFields()) {
+            if (field.isAnnotationPresent(Lazy.class) && camelToUpperSnakeCase(field.getName()).equals(column)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
     private String getTableName() {
         if (getClass().isAnonymousClass()) {
             throw new RuntimeException("Class must not be anonymous.");
@@ -169,6 +468,35 @@ public abstract class LiteORM<T> {
         }
     }
 
+    /**
+     * Instantiates an entity to hold a row read from the database. The
+     * table creation otherwise done by the constructor is skipped, as
+     * the table has just been read from.
+     */
+    private static <E> E newRowInstance(Class<E> theClass) throws InstantiationException,
+        IllegalAccessException, NoSuchMethodException, InvocationTargetException {
+        boolean wasConstructingRow = LiteORM.constructingRow.get();
+        LiteORM.constructingRow.set(true);
+        try {
+            return theClass.getDeclaredConstructor().newInstance();
+        } finally {
+            LiteORM.constructingRow.set(wasConstructingRow);
+        }
+    }
+
+    /**
+     * Column names of the passed entity class, excluding {@link Lazy} ones.
+     */
+    private static List<String> getColumnNames(Class<?> modelClass) {
+        List<String> columns = new ArrayList<>();
+        for (Field field : modelClass.getDeclaredFields()) {
+            if (!field.isAnnotationPresent(Lazy.class)) {
+                columns.add(camelToUpperSnakeCase(field.getName()));
+            }
+        }
+        return columns;
+    }
+
     private static String camelToUpperSnakeCase(String s) {
         StringBuilder sb = new StringBuilder();
         boolean skipFirst = true;
@@ -187,29 +515,35 @@ public abstract class LiteORM<T> {
         return sb.toString().toUpperCase();
     }
 
-    private static void create(String tableName, HashMap<String, Object> params) {
+    private static void create(Class<?> theClass, String tableName, HashMap<String, Object> params) {
         params.remove("ID"); // let SQLite figure this out
 
         StringJoiner sjField = new StringJoiner(",");
         StringJoiner sjValue = new StringJoiner(",");
+        List<Object> values = new ArrayList<>();
         params.forEach((k,v) -> {
             if (v == null) {
                 return;
             }
             sjField.add(k);
-            if (v instanceof Number) {
-                sjValue.add(v.toString());
+            sjValue.add("?");
+            if (v instanceof Number || v instanceof byte[]) {
+                values.add(v);
             } else if (v instanceof java.sql.Date) {
-                long date = ((java.sql.Date) v).toInstant().getEpochSecond();
-                sjValue.add(String.format("%s", date));
+                values.add(((java.sql.Date) v).toInstant().getEpochSecond());
             } else {
-                sjValue.add("\""+v.toString()+"\"");
+                values.add(v.toString());
             }
         });
 
         final String sql = String.format("INSERT INTO %s (%s) VALUES (%s);",
             tableName, sjField.toString(), sjValue.toString());
-        try (Connection conn = connect(); PreparedStatement ps = conn.prepareStatement(sql)) {
+        List<String> urls = getDbUrls(theClass);
+        String url = urls.get(nextShard(theClass, urls.size()));
+        try (Connection conn = openConnection(url); PreparedStatement ps = conn.prepareStatement(sql)) {
+            for (int i = 0; i < values.size(); i++) {
+                ps.setObject(i + 1, values.get(i));
+            }
             ps.executeUpdate();
             if (printSql) {
                 System.out.println(sql);
@@ -219,12 +553,13 @@ public abstract class LiteORM<T> {
         }
     }
 
-    private static void update(String tableName, HashMap<String,Object> params) {
+    private static void update(Class<?> theClass, String tableName, HashMap<String,Object> params) {
         StringJoiner sj = new StringJoiner(",");
         params.forEach((k,v) -> sj.add(" " + k + " = ?"));
         final String sql = String.format("UPDATE %s SET%s WHERE ID = %s",
             tableName, sj.toString(), params.get("ID"));
-        try (Connection conn = connect(); PreparedStatement ps = conn.prepareStatement(sql)) {
+        try (Connection conn = connect(theClass, ((Number) params.get("ID")).longValue());
+            PreparedStatement ps = conn.prepareStatement(sql)) {
             AtomicInteger i = new AtomicInteger(1);
             params.forEach((k,v) -> {
                 try {
@@ -242,7 +577,7 @@ public abstract class LiteORM<T> {
         }
     }
 
-    private static void delete(String tableName, HashMap<String, Object> params) {
+    private static void delete(Class<?> theClass, String tableName, HashMap<String, Object> params) {
         if (!params.containsKey("ID")) {
             throw new UnsupportedOperationException("A LiteORM entity must contain a property "
                 + "'ID' that uniquely identifies it.");
@@ -250,7 +585,8 @@ public abstract class LiteORM<T> {
         final String sql = String.format("DELETE FROM %s WHERE ID = %s",
             tableName,
             params.get("ID"));
-        try (Connection conn = connect(); PreparedStatement ps = conn.prepareStatement(sql)) {
+        try (Connection conn = connect(theClass, ((Number) params.get("ID")).longValue());
+            PreparedStatement ps = conn.prepareStatement(sql)) {
             ps.executeUpdate();
             if (printSql) {
                 System.out.println(sql);
@@ -272,7 +608,7 @@ public abstract class LiteORM<T> {
             System.out.println(sql);
         }
 
-        try (Connection conn = connect(); PreparedStatement ps = conn.prepareStatement(sql)) {
+        try (Connection conn = connect(obj.getClass(), id); PreparedStatement ps = conn.prepareStatement(sql)) {
             ResultSet rs = ps.executeQuery();
             if (rs.isClosed()) {
                 return false;
@@ -288,6 +624,9 @@ public abstract class LiteORM<T> {
         // params has been updated with values from query
         // update object from query
         for (Field field : obj.getClass().getDeclaredFields()) {
+            if (field.isAnnotationPresent(Lazy.class)) {
+                continue;
+            }
             //noinspection deprecation
             boolean wasAccessible = field.isAccessible();
             String sqlFieldName = camelToUpperSnakeCase(field.getName());
@@ -313,38 +652,46 @@ public abstract class LiteORM<T> {
 
     @SuppressWarnings({"rawtypes", "unchecked"})
     private static <T> List<T> findAll(Class<? extends LiteORM> theClass, String tableName) {
-        final String sql = String.format("SELECT * FROM %s", tableName);
+        StringJoiner sj = new StringJoiner(", ");
+        getColumnNames(theClass).forEach(sj::add);
+        final String sql = String.format("SELECT %s FROM %s", sj.toString(), tableName);
         if (printSql) {
             System.out.println(sql);
         }
 
-        List<T> list = new ArrayList<>();
-        try (Connection conn = connect(); PreparedStatement ps = conn.prepareStatement(sql)) {
-            ResultSet rs = ps.executeQuery();
-            ResultSetMetaData md = ps.getMetaData();
-            while (rs.next()) {
-                T obj = (T) theClass.getDeclaredConstructor().newInstance();
-                for (Field field : obj.getClass().getDeclaredFields()) {
-                    for (int i = 0; i < md.getColumnCount(); i++) {
-                        if (camelToUpperSnakeCase(field.getName())
-                            .equals(md.getColumnName(i + 1))) {
-                            field.setAccessible(true);
-                            try {
-                                field.set(obj, rs.getObject(md.getColumnName(i+1)));
-                            } catch (IllegalArgumentException ex) {
-                                // hacky fix for dates
-                                field.set(obj, rs.getDate(md.getColumnName(i+1)));
+        try {
+            return queryShards(theClass, conn -> {
+                List<T> list = new ArrayList<>();
+                try (PreparedStatement ps = conn.prepareStatement(sql)) {
+                    ResultSet rs = ps.executeQuery();
+                    ResultSetMetaData md = ps.getMetaData();
+                    while (rs.next()) {
+                        T obj = (T) newRowInstance(theClass);
+                        for (Field field : obj.getClass().getDeclaredFields()) {
+                            for (int i = 0; i < md.getColumnCount(); i++) {
+                                if (camelToUpperSnakeCase(field.getName())
+                                    .equals(md.getColumnName(i + 1))) {
+                                    field.setAccessible(true);
+                                    try {
+                                        field.set(obj, rs.getObject(md.getColumnName(i+1)));
+                                    } catch (IllegalArgumentException ex) {
+                                        // hacky fix for dates
+                                        field.set(obj, rs.getDate(md.getColumnName(i+1)));
+                                    }
+                                    field.setAccessible(false);
+                                }
                             }
-                            field.setAccessible(false);
                         }
+                        list.add(obj);
                     }
+                } catch (InstantiationException | IllegalAccessException | NoSuchMethodException | InvocationTargetException e) {
+                    throw new RuntimeException(e);
                 }
-                list.add(obj);
-            }
-        } catch (SQLException | InstantiationException | IllegalAccessException | NoSuchMethodException | InvocationTargetException e) {
+                return list;
+            });
+        } catch (SQLException e) {
             throw new RuntimeException(e);
         }
-        return list;
     }
 
     /**
@@ -354,6 +701,7 @@ public abstract class LiteORM<T> {
     public static void createTableIfNotExists(Class<?> modelClass) {
         String tableName = camelToUpperSnakeCase(modelClass.getSimpleName());
         boolean containsId = false;
+        List<String> lazyColumns = new ArrayList<>();
 
         StringJoiner sj = new StringJoiner(",\n");
         sj.add("ID INTEGER NOT NULL PRIMARY KEY AUTOINCREMENT");
@@ -364,6 +712,9 @@ public abstract class LiteORM<T> {
             }
             String type = declaredField.getType().getTypeName();
             String name = camelToUpperSnakeCase(declaredField.getName());
+            if (declaredField.isAnnotationPresent(Lazy.class)) {
+                lazyColumns.add(name);
+            }
             switch (type) {
                 case "java.lang.String":
                     sj.add(name + " VARCHAR NULL");
@@ -419,17 +770,100 @@ public abstract class LiteORM<T> {
         if (!containsId) {
             throw new UnsupportedOperationException("Class must contain an id field.");
         }
+        if (!lazyColumns.isEmpty()) {
+            sj.add(LAZY_VERSION_COLUMN + " INTEGER NOT NULL DEFAULT 0");
+        }
 
         final String sql = String.format("CREATE TABLE IF NOT EXISTS %s(\n%s\n);",
             tableName, sj.toString());
 
-        try (Connection conn = connect(); PreparedStatement ps = conn.prepareStatement(sql)) {
-            ps.executeUpdate();
-            if (printSql) {
-                System.out.println(sql);
+        List<String> urls = getDbUrls(modelClass);
+        for (int shard = 0; shard < urls.size(); shard++) {
+            try (Connection conn = openConnection(urls.get(shard));
+                PreparedStatement ps = conn.prepareStatement(sql)) {
+                ps.executeUpdate();
+                if (printSql) {
+                    System.out.println(sql);
+                }
+                if (shard > 0) {
+                    seedShardIds(conn, tableName, shard);
+                }
+                if (!lazyColumns.isEmpty()) {
+                    createLazyVersionTrigger(conn, tableName, lazyColumns);
+                }
+            } catch (SQLException e) {
+                throw new RuntimeException(e);
             }
-        } catch (SQLException e) {
-            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Adds the column and trigger that let {@link LazyInputStream}
+     * detect a lazy value being rewritten between two of its chunks.
+     * The version is bumped on any change to a lazy column, including
+     * ones not made through LiteORM. Does nothing once the trigger exists.
+     */
+    private static void createLazyVersionTrigger(Connection conn, String tableName,
+                                                 List<String> lazyColumns) throws SQLException {
+        final String triggerName = tableName + "_" + LAZY_VERSION_COLUMN;
+        // check first, as every entity constructor gets here and must not take a write lock
+        try (PreparedStatement ps = conn.prepareStatement(
+            "SELECT 1 FROM sqlite_master WHERE type = 'trigger' AND name = ?")) {
+            ps.setString(1, triggerName);
+            if (ps.executeQuery().next()) {
+                return;
+            }
+        }
+        boolean hasColumn = false;
+        try (PreparedStatement ps = conn.prepareStatement(String.format("PRAGMA table_info(%s)", tableName));
+            ResultSet rs = ps.executeQuery()) {
+            while (rs.next()) {
+                hasColumn |= LAZY_VERSION_COLUMN.equals(rs.getString("name"));
+            }
+        }
+        List<String> sqls = new ArrayList<>();
+        if (!hasColumn) {
+            // tables created before the field became lazy
+            sqls.add(String.format("ALTER TABLE %s ADD COLUMN %s INTEGER NOT NULL DEFAULT 0",
+                tableName, LAZY_VERSION_COLUMN));
+        }
+        StringJoiner changed = new StringJoiner(" OR ");
+        lazyColumns.forEach(column -> changed.add(String.format("OLD.%s IS NOT NEW.%s", column, column)));
+        sqls.add(String.format("CREATE TRIGGER IF NOT EXISTS %s AFTER UPDATE OF %s ON %s WHEN %s "
+                + "BEGIN UPDATE %s SET %s = %s + 1 WHERE ID = NEW.ID; END",
+            triggerName, String.join(", ", lazyColumns), tableName, changed,
+            tableName, LAZY_VERSION_COLUMN, LAZY_VERSION_COLUMN));
+        for (String sql : sqls) {
+            try (PreparedStatement ps = conn.prepareStatement(sql)) {
+                ps.executeUpdate();
+                if (printSql) {
+                    System.out.println(sql);
+                }
+            }
+        }
+    }
+
+    /**
+     * Starts the AUTOINCREMENT sequence of a shard's table at
+     * {@code shard * SHARD_ID_SPAN}, so that the shard holding an
+     * entity can be told from its ID. Does nothing once the table
+     * has a sequence.
+     */
+    private static void seedShardIds(Connection conn, String tableName, int shard) throws SQLException {
+        // check first, as every entity constructor gets here and must not take a write lock
+        try (PreparedStatement ps = conn.prepareStatement("SELECT 1 FROM sqlite_sequence WHERE name = ?")) {
+            ps.setString(1, tableName);
+            if (ps.executeQuery().next()) {
+                return;
+            }
+        }
+        final String sql = "INSERT INTO sqlite_sequence (name, seq) SELECT ?, ? "
+            + "WHERE NOT EXISTS (SELECT 1 FROM sqlite_sequence WHERE name = ?)";
+        try (PreparedStatement ps = conn.prepareStatement(sql)) {
+            ps.setString(1, tableName);
+            ps.setLong(2, shard * SHARD_ID_SPAN);
+            ps.setString(3, tableName);
+            ps.executeUpdate();
         }
     }
 
@@ -440,7 +874,7 @@ public abstract class LiteORM<T> {
         while (rs.next()) {
             try {
                 //noinspection unchecked
-                T obj = (T) theClass.getDeclaredConstructor().newInstance();
+                T obj = (T) newRowInstance(theClass);
                 for (int i = 1; i < md.getColumnCount()+1; i++) {
                     String colName = md.getColumnName(i);
                     for (Field field : obj.getClass().getDeclaredFields()) {
@@ -448,7 +882,11 @@ public abstract class LiteORM<T> {
                         if (colName.equals(fieldName)) {
                             field.setAccessible(true);
                             try {
-                                field.set(obj, rs.getObject(i));
+                                Object value = rs.getObject(i);
+                                field.set(obj, value);
+                                if (field.isAnnotationPresent(Lazy.class)) {
+                                    ((LiteORM<?>) obj).storedLazyValues.put(fieldName, value);
+                                }
                             } catch (IllegalArgumentException ex) {
                                 field.set(obj, rs.getDate(md.getColumnName(i)));
                             }
@@ -471,18 +909,472 @@ public abstract class LiteORM<T> {
      * @throws SQLException if unable to get a {@code Connection}
      */
     public static Connection connect() throws SQLException {
-        return DriverManager.getConnection(LiteORM.dbUrl);
+        return openConnection(LiteORM.dbUrl);
+    }
+
+    /**
+     * Attempts to return a Connection object to the SQLite database
+     * in which the passed entity class is stored. Entities without
+     * a database of their own are stored in the default database.
+     * @param modelClass Entity class whose database should be connected to.
+     * @return {@code java.sql.Connection} for the entity's database
+     * @throws SQLException if unable to get a {@code Connection}
+     */
+    public static Connection connect(Class<?> modelClass) throws SQLException {
+        List<String> urls = getDbUrls(modelClass);
+        if (urls.size() > 1) {
+            throw new IllegalStateException(String.format("%s is sharded, use connect(Class, long) "
+                + "to connect to the shard holding an entity.", modelClass.getSimpleName()));
+        }
+        return openConnection(urls.get(0));
+    }
+
+    /**
+     * Attempts to return a Connection object to the SQLite database
+     * holding the entity of the passed class with the passed ID.
+     * For entities that are not sharded, this is the same database
+     * as returned by {@link #connect(Class)}.
+     * @param modelClass Entity class whose database should be connected to.
+     * @param id The entity's primary key.
+     * @return {@code java.sql.Connection} for the entity's database
+     * @throws SQLException if unable to get a {@code Connection}
+     */
+    public static Connection connect(Class<?> modelClass, long id) throws SQLException {
+        String url = getDbUrl(modelClass, id);
+        if (url == null) {
+            throw new IllegalArgumentException(String.format("ID %s does not belong to any shard of %s.",
+                id, modelClass.getSimpleName()));
+        }
+        return openConnection(url);
+    }
+
+    /**
+     * Opens a connection to the passed database URL. Connections to the
+     * in-memory database are counted until closed, so that
+     * {@link #closeInMemoryDatabase()} can wait for writes in progress,
+     * and none are opened while it runs. If the in-memory database was
+     * closed in the meantime, the database switched back to is connected
+     * to instead of a new, empty in-memory one.
+     */
+    private static Connection openConnection(String url) throws SQLException {
+        if (!MEMORY_DB_URL.equals(url)) {
+            return DriverManager.getConnection(url);
+        }
+        synchronized (LiteORM.memoryGate) {
+            try {
+                while (LiteORM.memoryClosing) {
+                    LiteORM.memoryGate.wait();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new SQLException("Interrupted while the in-memory database was being closed.", e);
+            }
+            if (!MEMORY_DB_URL.equals(LiteORM.dbUrl)) {
+                return DriverManager.getConnection(LiteORM.dbUrl);
+            }
+            Connection conn = DriverManager.getConnection(url);
+            LiteORM.openMemoryConnections++;
+            return trackMemoryConnection(conn);
+        }
+    }
+
+    private static Connection trackMemoryConnection(Connection conn) {
+        AtomicBoolean closed = new AtomicBoolean();
+        return (Connection) Proxy.newProxyInstance(LiteORM.class.getClassLoader(),
+            new Class<?>[] {Connection.class}, (proxy, method, args) -> {
+                if (method.getName().equals("close") && method.getParameterCount() == 0) {
+                    if (closed.compareAndSet(false, true)) {
+                        try {
+                            conn.close();
+                        } finally {
+                            synchronized (LiteORM.memoryGate) {
+                                LiteORM.openMemoryConnections--;
+                                LiteORM.memoryGate.notifyAll();
+                            }
+                        }
+                    }
+                    return null;
+                }
+                try {
+                    return method.invoke(conn, args);
+                } catch (InvocationTargetException e) {
+                    throw e.getCause();
+                }
+            });
+    }
+
+    /**
+     * URLs of the databases the passed entity class is stored in,
+     * one per shard in shard order, or a single one if not sharded.
+     */
+    private static List<String> getDbUrls(Class<?> modelClass) {
+        List<String> shardUrls = LiteORM.entityShardUrls.get(modelClass);
+        if (shardUrls != null) {
+            return shardUrls;
+        }
+        Supplier<String> pathSupplier = LiteORM.entityDbPaths.get(modelClass);
+        String path = pathSupplier == null ? null : pathSupplier.get();
+        return Collections.singletonList(path == null
+            ? LiteORM.dbUrl : String.format("jdbc:sqlite:%s", path));
+    }
+
+    /**
+     * URL of the database holding the entity with the passed ID,
+     * or null if the ID is outside the ID range of every shard.
+     */
+    private static String getDbUrl(Class<?> modelClass, long id) {
+        List<String> urls = getDbUrls(modelClass);
+        if (urls.size() == 1) {
+            return urls.get(0);
+        }
+        int shard = getShard(id, urls.size());
+        return shard < 0 ? null : urls.get(shard);
+    }
+
+    /**
+     * Index of the shard handing out the passed ID, see
+     * {@link #seedShardIds(Connection, String, int)}, or -1
+     * if there is no such shard.
+     */
+    private static int getShard(long id, int shards) {
+        long shard = id < 1 ? 0 : (id - 1) / SHARD_ID_SPAN;
+        return shard < shards ? (int) shard : -1;
+    }
+
+    /**
+     * Index of the shard to create the next entity of the passed
+     * class in. Entities are spread over the shards in turn.
+     */
+    private static int nextShard(Class<?> modelClass, int shards) {
+        if (shards == 1) {
+            return 0;
+        }
+        AtomicInteger next = LiteORM.nextShards.computeIfAbsent(modelClass, c -> new AtomicInteger());
+        return Math.floorMod(next.getAndIncrement(), shards);
+    }
+
+    /**
+     * Runs the passed query against every database the entity class
+     * is stored in, in parallel if it is sharded, and concatenates the
+     * results in shard order.
+     */
+    private static <R> List<R> queryShards(Class<?> modelClass, ShardQuery<R> query) throws SQLException {
+        List<String> urls = getDbUrls(modelClass);
+        if (urls.size() == 1) {
+            return runShardQuery(urls.get(0), query);
+        }
+        List<Future<List<R>>> futures = new ArrayList<>();
+        for (String url : urls) {
+            futures.add(getShardExecutor().submit(() -> runShardQuery(url, query)));
+        }
+        List<R> results = new ArrayList<>();
+        for (Future<List<R>> future : futures) {
+            try {
+                results.addAll(future.get());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException(e);
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof SQLException) {
+                    throw (SQLException) e.getCause();
+                } else if (e.getCause() instanceof RuntimeException) {
+                    throw (RuntimeException) e.getCause();
+                }
+                throw new RuntimeException(e.getCause());
+            }
+        }
+        return results;
+    }
+
+    private static <R> List<R> runShardQuery(String url, ShardQuery<R> query) throws SQLException {
+        try (Connection conn = openConnection(url)) {
+            return query.run(conn);
+        }
+    }
+
+    @FunctionalInterface
+    private interface ShardQuery<R> {
+        List<R> run(Connection conn) throws SQLException;
+    }
+
+    private static synchronized ExecutorService getShardExecutor() {
+        if (LiteORM.shardExecutor == null) {
+            LiteORM.shardExecutor = Executors.newCachedThreadPool(r -> {
+                Thread t = new Thread(r, "LiteORM-shard");
+                t.setDaemon(true);
+                return t;
+            });
+        }
+        return LiteORM.shardExecutor;
     }
 
     /**
      * Overrides the default path for the SQLite database.
      * By default, LiteORM saves all entities in a file called
      * 'LiteORM.db' located in the working directory.
+     * <p>If the in-memory database is in use, the path takes effect
+     * once it is closed.</p>
      * @param path Path where the SQLite database
      *             will be created.
      */
     public static void setDatabasePath(String path) {
-        LiteORM.dbUrl = String.format("jdbc:sqlite:%s", path);
+        synchronized (LiteORM.memoryLock) {
+            if (LiteORM.memoryConnection != null) {
+                // applies once the in-memory database is closed
+                LiteORM.fileDbUrl = String.format("jdbc:sqlite:%s", path);
+            } else {
+                LiteORM.dbUrl = String.format("jdbc:sqlite:%s", path);
+            }
+        }
+    }
+
+    /**
+     * Stores the passed entity class in its own SQLite database,
+     * rather than the default one. Each database file has its own
+     * write lock, so entities routed to separate files may be
+     * written to concurrently.
+     * <p>Should be called before the entity's table is created,
+     * i.e. before the first instance of the entity is constructed.</p>
+     * @param modelClass Entity class to store in a separate database.
+     * @param path Path where the entity's SQLite database
+     *             will be created, or null to use the default database.
+     */
+    public static void setDatabasePath(Class<?> modelClass, String path) {
+        setDatabaseRouter(modelClass, path == null ? null : () -> path);
+    }
+
+    /**
+     * Stores the passed entity class in a SQLite database chosen each
+     * time the entity's database is connected to, e.g. per tenant:
+     * <pre>{@code
+     * LiteORM.setDatabaseRouter(Invoice.class, () -> currentTenant.get() + ".db");
+     * }</pre>
+     * <p>The entity's table is created in whichever database is chosen
+     * when an instance of the entity is constructed.</p>
+     * @param modelClass Entity class to store in a separate database.
+     * @param path Supplies the path of the entity's SQLite database,
+     *             or null to use the default database. If the supplier
+     *             itself is null, the default database is used.
+     */
+    public static void setDatabaseRouter(Class<?> modelClass, Supplier<String> path) {
+        LiteORM.entityShardUrls.remove(modelClass);
+        if (path == null) {
+            LiteORM.entityDbPaths.remove(modelClass);
+        } else {
+            LiteORM.entityDbPaths.put(modelClass, path);
+        }
+    }
+
+    /**
+     * Spreads the passed entity class over several SQLite databases,
+     * or shards, each with its own write lock. New entities are created
+     * in each shard in turn, and each shard hands out IDs from its own
+     * range, so an entity's ID determines its shard. {@code findById()},
+     * {@code update()} and {@code delete()} use a single shard, while
+     * {@code findAll()}, {@code count()} and {@code toObjects(String)}
+     * query all shards in parallel.
+     * <p>Should be called before the entity's table is created, i.e.
+     * before the first instance of the entity is constructed. Shards
+     * must not be reordered or removed once they hold entities.</p>
+     * @param modelClass Entity class to shard.
+     * @param paths Paths of the shards' SQLite databases, in shard
+     *              order, or none to use the default database.
+     */
+    public static void setDatabaseShards(Class<?> modelClass, String... paths) {
+        LiteORM.entityDbPaths.remove(modelClass);
+        if (paths == null || paths.length == 0) {
+            LiteORM.entityShardUrls.remove(modelClass);
+            return;
+        }
+        List<String> urls = new ArrayList<>();
+        for (String path : paths) {
+            urls.add(String.format("jdbc:sqlite:%s", path));
+        }
+        LiteORM.entityShardUrls.put(modelClass, Collections.unmodifiableList(urls));
+    }
+
+    /**
+     * Switches the default database to a shared in-memory SQLite
+     * database. If a snapshot exists at the passed path, it is loaded
+     * into memory first. The in-memory database is then copied back
+     * to the snapshot path every {@code snapshotIntervalSeconds}
+     * seconds, and once more on {@link #closeInMemoryDatabase()} or
+     * JVM shutdown.
+     * <p>Changes made since the last snapshot are lost if the JVM
+     * terminates abnormally.</p>
+     * <p>Writers are paused while a snapshot is taken, see
+     * {@link #snapshot()}, so the interval trades the amount of
+     * changes at risk against how often writers stall.</p>
+     * @param snapshotPath Path of the SQLite database file used for
+     *                     loading and saving snapshots.
+     * @param snapshotIntervalSeconds Seconds between periodic snapshots,
+     *                                0 or less to only snapshot on demand
+     *                                and on close.
+     */
+    public static void useInMemoryDatabase(String snapshotPath, long snapshotIntervalSeconds) {
+        synchronized (LiteORM.memoryLock) {
+            if (LiteORM.memoryConnection != null) {
+                throw new IllegalStateException("In-memory database is already in use.");
+            }
+            try {
+                // the shared in-memory database only lives as long as a connection to it is open
+                LiteORM.memoryConnection = DriverManager.getConnection(MEMORY_DB_URL);
+                if (Files.exists(Paths.get(snapshotPath))) {
+                    try (Statement stmt = LiteORM.memoryConnection.createStatement()) {
+                        stmt.executeUpdate(String.format("restore from \"%s\"", snapshotPath));
+                    }
+                }
+            } catch (SQLException e) {
+                closeQuietly(LiteORM.memoryConnection);
+                LiteORM.memoryConnection = null;
+                throw new RuntimeException(e);
+            }
+            LiteORM.snapshotPath = snapshotPath;
+            LiteORM.fileDbUrl = LiteORM.dbUrl;
+            LiteORM.dbUrl = MEMORY_DB_URL;
+
+            if (snapshotIntervalSeconds > 0) {
+                LiteORM.snapshotExecutor = Executors.newSingleThreadScheduledExecutor(r -> {
+                    Thread t = new Thread(r, "LiteORM-snapshot");
+                    t.setDaemon(true);
+                    return t;
+                });
+                LiteORM.snapshotExecutor.scheduleWithFixedDelay(() -> {
+                    try {
+                        snapshot();
+                    } catch (RuntimeException ignored) {
+                        // keep snapshotting, a later attempt or the one on close may succeed
+                    }
+                }, snapshotIntervalSeconds, snapshotIntervalSeconds, TimeUnit.SECONDS);
+            }
+            if (LiteORM.shutdownHook == null) {
+                LiteORM.shutdownHook = new Thread(() -> {
+                    try {
+                        closeInMemoryDatabase(SHUTDOWN_CLOSE_TIMEOUT_SECONDS);
+                    } catch (IllegalStateException e) {
+                        // connections are still open, save what has been written so far
+                        snapshot();
+                    }
+                }, "LiteORM-shutdown");
+                Runtime.getRuntime().addShutdownHook(LiteORM.shutdownHook);
+            }
+        }
+    }
+
+    /**
+     * Copies the in-memory database to its snapshot path with
+     * {@code VACUUM INTO}, which reads the database in a single read
+     * transaction, so the snapshot is consistent. The copy is written to
+     * a temporary file first and then moved into place, so a failed
+     * snapshot never replaces the previous one. Does nothing if the
+     * in-memory database is not in use.
+     * <p>Writers are paused for the duration of the snapshot: connections
+     * to a shared in-memory database share one cache, in which the read
+     * transaction holds table locks that writers wait on. The pause grows
+     * with the size of the database, e.g. a few hundred milliseconds for
+     * 200 MB. Neither the SQLite driver nor shared-cache mode offer a way
+     * to copy the database without it.</p>
+     */
+    public static void snapshot() {
+        String path;
+        synchronized (LiteORM.memoryLock) {
+            if (LiteORM.memoryConnection == null) {
+                return;
+            }
+            path = LiteORM.snapshotPath;
+        }
+        // serialize snapshots, VACUUM INTO fails if its target already exists
+        synchronized (LiteORM.snapshotLock) {
+            Path target = Paths.get(path).toAbsolutePath();
+            Path temp = target.resolveSibling(target.getFileName() + ".snapshot");
+            try (Connection conn = DriverManager.getConnection(MEMORY_DB_URL);
+                PreparedStatement ps = conn.prepareStatement("VACUUM INTO ?")) {
+                Files.deleteIfExists(temp);
+                ps.setString(1, temp.toString());
+                ps.executeUpdate();
+                Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+            } catch (SQLException | IOException e) {
+                throw new RuntimeException("Unable to snapshot in-memory database.", e);
+            }
+        }
+    }
+
+    /**
+     * Takes a final snapshot of the in-memory database, releases it,
+     * and switches back to the database in use before
+     * {@link #useInMemoryDatabase(String, long)} was called.
+     * <p>New connections to the in-memory database wait while it is
+     * being closed, and then connect to the database switched back to.
+     * Connections already open, including those returned by
+     * {@link #connect()} and lazy streams, are waited for to be closed,
+     * for up to 10 seconds, so that no write made to the in-memory
+     * database is left out of the final snapshot.</p>
+     * <p>If connections are still open after that, or the snapshot fails,
+     * an exception is thrown and the in-memory database is kept in use,
+     * so that the call may be retried.</p>
+     * Does nothing if the in-memory database is not in use.
+     */
+    public static void closeInMemoryDatabase() {
+        closeInMemoryDatabase(CLOSE_TIMEOUT_SECONDS);
+    }
+
+    private static void closeInMemoryDatabase(long timeoutSeconds) {
+        synchronized (LiteORM.memoryLock) {
+            if (LiteORM.memoryConnection == null) {
+                return;
+            }
+            synchronized (LiteORM.memoryGate) {
+                LiteORM.memoryClosing = true;
+            }
+            try {
+                awaitMemoryConnectionsClosed(timeoutSeconds);
+                snapshot();
+                if (LiteORM.snapshotExecutor != null) {
+                    LiteORM.snapshotExecutor.shutdownNow();
+                    LiteORM.snapshotExecutor = null;
+                }
+                closeQuietly(LiteORM.memoryConnection);
+                LiteORM.memoryConnection = null;
+                LiteORM.dbUrl = LiteORM.fileDbUrl;
+            } finally {
+                synchronized (LiteORM.memoryGate) {
+                    LiteORM.memoryClosing = false;
+                    LiteORM.memoryGate.notifyAll();
+                }
+            }
+        }
+    }
+
+    private static void awaitMemoryConnectionsClosed(long timeoutSeconds) {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(timeoutSeconds);
+        synchronized (LiteORM.memoryGate) {
+            try {
+                while (LiteORM.openMemoryConnections > 0) {
+                    long remaining = deadline - System.nanoTime();
+                    if (remaining <= 0) {
+                        throw new IllegalStateException(String.format("%d connections to the in-memory "
+                            + "database are still open.", LiteORM.openMemoryConnections));
+                    }
+                    TimeUnit.NANOSECONDS.timedWait(LiteORM.memoryGate, remaining);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while waiting for connections "
+                    + "to the in-memory database to be closed.", e);
+            }
+        }
+    }
+
+    private static void closeQuietly(Connection conn) {
+        if (conn == null) {
+            return;
+        }
+        try {
+            conn.close();
+        } catch (SQLException ignored) {
+            // nothing more to do
+        }
     }
 
     /**
@@ -493,7 +1385,34 @@ public abstract class LiteORM<T> {
         LiteORM.printSql = enabled;
     }
 
-    private static String dbUrl = "jdbc:sqlite:LiteORM.db";
+    private static volatile String dbUrl = "jdbc:sqlite:LiteORM.db";
     private static boolean printSql;
+    private static final Map<Class<?>, Supplier<String>> entityDbPaths = new ConcurrentHashMap<>();
+    private static final Map<Class<?>, List<String>> entityShardUrls = new ConcurrentHashMap<>();
+    private static final Map<Class<?>, AtomicInteger> nextShards = new ConcurrentHashMap<>();
+    // IDs each shard can hand out before running into the next shard's range
+    private static final long SHARD_ID_SPAN = 1L << 40;
+    // hidden column on tables of entities with @Lazy fields, see createLazyVersionTrigger()
+    private static final String LAZY_VERSION_COLUMN = "LITEORM_LAZY_VERSION";
+    private static ExecutorService shardExecutor;
+    // values of @Lazy fields as last loaded or written, by column name
+    private final Map<String, Object> storedLazyValues = new HashMap<>();
+    private static final ThreadLocal<Boolean> constructingRow = ThreadLocal.withInitial(() -> false);
+
+    private static final String MEMORY_DB_URL = "jdbc:sqlite:file:LiteORM?mode=memory&cache=shared";
+    private static final Object memoryLock = new Object();
+    private static final Object snapshotLock = new Object();
+    private static Connection memoryConnection;
+    private static String snapshotPath;
+    private static String fileDbUrl;
+    private static ScheduledExecutorService snapshotExecutor;
+    private static Thread shutdownHook;
+    // guards the two fields below, see openConnection(String)
+    private static final Object memoryGate = new Object();
+    private static boolean memoryClosing;
+    private static int openMemoryConnections;
+    private static final long CLOSE_TIMEOUT_SECONDS = 10;
+    // the JVM is exiting, so do not hold it up waiting for connections
+    private static final long SHUTDOWN_CLOSE_TIMEOUT_SECONDS = 1;
 
 }
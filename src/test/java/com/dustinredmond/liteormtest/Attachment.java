@@ -0,0 +1,66 @@
+package com.dustinredmond.liteormtest;
+
+/*
+ *  Copyright 2020  Dustin K. Redmond
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+import com.dustinredmond.liteorm.Lazy;
+import com.dustinredmond.liteorm.LiteORM;
+
+/**
+ * Test POJO with a lazily loaded
+ * column to test lazy loading
+ */
+@SuppressWarnings("unused")
+public class Attachment extends LiteORM<Attachment> {
+
+    private long id;
+    private String fileName;
+    @Lazy
+    private byte[] content;
+
+    public Attachment() {
+        super();
+    }
+
+    public Attachment(String fileName, byte[] content) {
+        this.fileName = fileName;
+        this.content = content;
+    }
+
+    public long getId() {
+        return id;
+    }
+
+    public void setId(long id) {
+        this.id = id;
+    }
+
+    public String getFileName() {
+        return fileName;
+    }
+
+    public void setFileName(String fileName) {
+        this.fileName = fileName;
+    }
+
+    public byte[] getContent() {
+        return content;
+    }
+
+    public void setContent(byte[] content) {
+        this.content = content;
+    }
+}
@@ -0,0 +1,64 @@
+package com.dustinredmond.liteormtest;
+
+/*
+ *  Copyright 2020  Dustin K. Redmond
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+import com.dustinredmond.liteorm.LiteORM;
+
+/**
+ * Test POJO with binary and BLOB
+ * columns to test export/import
+ */
+@SuppressWarnings("unused")
+public class BinaryRecord extends LiteORM<BinaryRecord> {
+
+    private long id;
+    private byte[] data;
+    private StringBuilder label;
+
+    public BinaryRecord() {
+        super();
+    }
+
+    public BinaryRecord(byte[] data, StringBuilder label) {
+        this.data = data;
+        this.label = label;
+    }
+
+    public long getId() {
+        return id;
+    }
+
+    public void setId(long id) {
+        this.id = id;
+    }
+
+    public byte[] getData() {
+        return data;
+    }
+
+    public void setData(byte[] data) {
+        this.data = data;
+    }
+
+    public StringBuilder getLabel() {
+        return label;
+    }
+
+    public void setLabel(StringBuilder label) {
+        this.label = label;
+    }
+}
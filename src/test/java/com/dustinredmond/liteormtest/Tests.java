@@ -17,17 +17,29 @@ package com.dustinredmond.liteormtest;
  */
 
 import com.dustinredmond.liteorm.LiteORM;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.sql.Connection;
+import java.sql.DriverManager;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.Date;
 import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
@@ -142,6 +154,454 @@ public class Tests {
         destroy();
     }
 
+    @Test
+    public void testEntityDatabasePath() {
+        destroy();
+        LiteORM.setDatabasePath(Employee.class, ENTITY_DB_PATH.toString());
+        try {
+            new Employee("John", "Smith", new Date()).create();
+            assertTrue(Files.exists(ENTITY_DB_PATH));
+            assertFalse(Files.exists(TEST_DB_PATH));
+            assertEquals("John", new Employee().findById(1).getFirstName());
+        } finally {
+            LiteORM.setDatabasePath(Employee.class, null);
+            try {
+                Files.deleteIfExists(ENTITY_DB_PATH);
+            } catch (IOException e) {
+                fail(e.getLocalizedMessage());
+            }
+        }
+        destroy();
+    }
+
+    @Test
+    public void testTenantDatabasePath() throws IOException {
+        destroy();
+        AtomicReference<String> tenant = new AtomicReference<>("a");
+        LiteORM.setDatabaseRouter(Employee.class, () -> "LiteORM-tenant-" + tenant.get() + ".db");
+        try {
+            new Employee("John", "Smith", new Date()).create();
+            tenant.set("b");
+            new Employee("Jane", "Doe", new Date()).create();
+            new Employee("Jim", "Doe", new Date()).create();
+
+            assertEquals(2, new Employee().findAll().size());
+            assertEquals("Jane", new Employee().findById(1).getFirstName());
+            tenant.set("a");
+            assertEquals(1, new Employee().count());
+            assertEquals("John", new Employee().findById(1).getFirstName());
+        } finally {
+            LiteORM.setDatabaseRouter(Employee.class, null);
+            Files.deleteIfExists(Paths.get("LiteORM-tenant-a.db"));
+            Files.deleteIfExists(Paths.get("LiteORM-tenant-b.db"));
+        }
+        assertFalse(Files.exists(TEST_DB_PATH));
+    }
+
+    @Test
+    public void testShards() throws IOException, SQLException {
+        destroy();
+        LiteORM.setDatabaseShards(Employee.class, SHARD_PATHS.stream().map(Path::toString).toArray(String[]::new));
+        try {
+            for (int i = 0; i < 9; i++) {
+                new Employee("First" + i, "Last" + i, new Date()).create();
+            }
+            for (Path shard : SHARD_PATHS) {
+                try (Connection conn = DriverManager.getConnection("jdbc:sqlite:" + shard);
+                    PreparedStatement ps = conn.prepareStatement("SELECT COUNT(*) FROM EMPLOYEE")) {
+                    ResultSet rs = ps.executeQuery();
+                    assertEquals(3, rs.getInt(1));
+                }
+            }
+            assertFalse(Files.exists(TEST_DB_PATH));
+
+            List<Employee> employees = new Employee().findAll();
+            assertEquals(9, employees.size());
+            assertEquals(9, new Employee().count());
+            for (int i = 1; i < employees.size(); i++) {
+                assertTrue(employees.get(i - 1).getId() < employees.get(i).getId());
+            }
+            for (Employee e : employees) {
+                assertEquals(e.getFirstName(), new Employee().findById(e.getId()).getFirstName());
+            }
+
+            List<Employee> found = new Employee().toObjects("SELECT * FROM EMPLOYEE WHERE FIRST_NAME = 'First4'");
+            assertEquals(1, found.size());
+            Employee e = new Employee().findById(found.get(0).getId());
+            e.setLastName("Johnson");
+            e.update();
+            assertEquals("Johnson", new Employee().findById(e.getId()).getLastName());
+            e.delete();
+            assertNull(new Employee().findById(e.getId()));
+            assertEquals(8, new Employee().count());
+
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            assertEquals(8, new Employee().exportTo(out, LiteORM.Format.CSV));
+            deleteShards();
+            assertEquals(8, new Employee().importFrom(new ByteArrayInputStream(out.toByteArray()),
+                LiteORM.Format.CSV));
+            List<Employee> imported = new Employee().findAll();
+            assertEquals(8, imported.size());
+            for (int i = 0; i < imported.size(); i++) {
+                assertEquals(employees.get(i < 4 ? i : i + 1).getId(), imported.get(i).getId());
+            }
+        } finally {
+            LiteORM.setDatabaseShards(Employee.class);
+            deleteShards();
+        }
+    }
+
+    private static void deleteShards() throws IOException {
+        for (Path shard : SHARD_PATHS) {
+            Files.deleteIfExists(shard);
+        }
+    }
+
+    @Test
+    public void testInMemoryDatabase() {
+        destroy();
+        LiteORM.useInMemoryDatabase(TEST_DB_PATH.toString(), 0);
+        try {
+            new Employee("John", "Smith", new Date()).create();
+            assertFalse(Files.exists(TEST_DB_PATH));
+            LiteORM.snapshot();
+            assertTrue(Files.exists(TEST_DB_PATH));
+            new Employee("Jane", "Doe", new Date()).create();
+        } finally {
+            LiteORM.closeInMemoryDatabase();
+        }
+        // back on the snapshot file, which holds both entities
+        assertEquals(2, new Employee().findAll().size());
+
+        LiteORM.useInMemoryDatabase(TEST_DB_PATH.toString(), 0);
+        try {
+            assertEquals("Jane", new Employee().findById(2).getFirstName());
+        } finally {
+            LiteORM.closeInMemoryDatabase();
+        }
+        destroy();
+    }
+
+    @Test
+    public void testSnapshotWhileWriting() throws InterruptedException {
+        destroy();
+        LiteORM.useInMemoryDatabase(TEST_DB_PATH.toString(), 0);
+        AtomicBoolean stop = new AtomicBoolean();
+        AtomicReference<Throwable> writerError = new AtomicReference<>();
+        AtomicInteger created = new AtomicInteger();
+        Thread writer = new Thread(() -> {
+            try {
+                while (!stop.get()) {
+                    new Employee("John", "Smith", new Date()).create();
+                    created.incrementAndGet();
+                }
+            } catch (Throwable t) {
+                writerError.set(t);
+            }
+        });
+        try {
+            for (int i = 0; i < 500; i++) {
+                new Employee("First" + i, "Last" + i, new Date()).create();
+            }
+            writer.start();
+            while (created.get() < 100 && writerError.get() == null) {
+                Thread.sleep(10);
+            }
+            for (int i = 0; i < 5; i++) {
+                LiteORM.snapshot();
+            }
+            int createdBeforeLastSnapshot = created.get();
+            LiteORM.snapshot();
+            stop.set(true);
+            writer.join();
+            assertNull(writerError.get());
+
+            LiteORM.setDatabasePath(Employee.class, TEST_DB_PATH.toString());
+            assertTrue(new Employee().findAll().size() >= 500 + createdBeforeLastSnapshot);
+            LiteORM.setDatabasePath(Employee.class, null);
+        } finally {
+            stop.set(true);
+            writer.join();
+            LiteORM.closeInMemoryDatabase();
+        }
+        assertEquals(500 + created.get(), new Employee().findAll().size());
+        destroy();
+    }
+
+    @Test
+    public void testCloseWhileWriting() throws InterruptedException {
+        destroy();
+        LiteORM.useInMemoryDatabase(TEST_DB_PATH.toString(), 0);
+        AtomicBoolean stop = new AtomicBoolean();
+        AtomicReference<Throwable> writerError = new AtomicReference<>();
+        AtomicInteger created = new AtomicInteger();
+        List<Thread> writers = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            writers.add(new Thread(() -> {
+                try {
+                    while (!stop.get()) {
+                        new Employee("John", "Smith", new Date()).create();
+                        created.incrementAndGet();
+                    }
+                } catch (Throwable t) {
+                    writerError.set(t);
+                }
+            }));
+        }
+        try {
+            writers.forEach(Thread::start);
+            while (created.get() < 200 && writerError.get() == null) {
+                Thread.sleep(10);
+            }
+            // writes in progress end up in the snapshot, later ones in the file database
+            LiteORM.closeInMemoryDatabase();
+            int createdAtClose = created.get();
+            while (created.get() < createdAtClose + 200 && writerError.get() == null) {
+                Thread.sleep(10);
+            }
+        } finally {
+            stop.set(true);
+            for (Thread writer : writers) {
+                writer.join();
+            }
+            LiteORM.closeInMemoryDatabase();
+        }
+        assertNull(writerError.get());
+        assertEquals(created.get(), new Employee().count());
+        destroy();
+    }
+
+    @Test
+    public void testFailedCloseKeepsInMemoryDatabase() throws IOException {
+        destroy();
+        Path dir = Paths.get("LiteORM-snapshot-tests");
+        Path snapshot = dir.resolve("snapshot.db");
+        LiteORM.useInMemoryDatabase(snapshot.toString(), 0);
+        try {
+            new Employee("John", "Smith", new Date()).create();
+            try {
+                LiteORM.closeInMemoryDatabase();
+                fail("Snapshot to a missing directory should fail.");
+            } catch (RuntimeException expected) {
+                // the in-memory database must survive
+            }
+            assertEquals("John", new Employee().findById(1).getFirstName());
+            Files.createDirectories(dir);
+            LiteORM.closeInMemoryDatabase();
+
+            LiteORM.setDatabasePath(snapshot.toString());
+            assertEquals("John", new Employee().findById(1).getFirstName());
+        } finally {
+            LiteORM.setDatabasePath(TEST_DB_PATH.toString());
+            Files.deleteIfExists(snapshot);
+            Files.deleteIfExists(dir);
+        }
+    }
+
+    @Test
+    public void testExportImport() throws IOException {
+        for (LiteORM.Format format : LiteORM.Format.values()) {
+            destroy();
+            new Employee("John", "Smith", new Date()).create();
+            new Employee("Jane", "Doe", null).create();
+            Employee jane = new Employee().findById(2);
+            jane.setFirstName("Jane, \"JD\"");
+            jane.setLastName("Doe\nSmith");
+            jane.update();
+
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            assertEquals(2, new Employee().exportTo(out, format));
+            destroy();
+
+            assertEquals(2, new Employee().importFrom(new ByteArrayInputStream(out.toByteArray()), format));
+            Employee e = new Employee().findById(2);
+            assertEquals("Jane, \"JD\"", e.getFirstName());
+            assertEquals("Doe\nSmith", e.getLastName());
+            assertNull(e.getHireDate());
+            assertEquals("John", new Employee().findById(1).getFirstName());
+        }
+        destroy();
+    }
+
+    @Test
+    public void testExportImportBinary() throws IOException, SQLException {
+        for (LiteORM.Format format : LiteORM.Format.values()) {
+            destroy();
+            new BinaryRecord(new byte[] {0, 1, 2, (byte) 255}, new StringBuilder("abcd")).create();
+            new BinaryRecord(null, new StringBuilder("base64:abcd")).create();
+            new BinaryRecord(new byte[] {42}, new StringBuilder("\\x")).create();
+            List<String> expected = readBinaryRecords();
+
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            assertEquals(3, new BinaryRecord().exportTo(out, format));
+            destroy();
+
+            List<Long> progress = new ArrayList<>();
+            assertEquals(3, new BinaryRecord().importFrom(new ByteArrayInputStream(out.toByteArray()),
+                format, (rows, rowsPerSecond) -> {
+                    assertTrue(rowsPerSecond >= 0);
+                    progress.add(rows);
+                }));
+            assertEquals(Collections.singletonList(3L), progress);
+            assertEquals(expected, readBinaryRecords());
+        }
+        destroy();
+    }
+
+    private static List<String> readBinaryRecords() throws SQLException {
+        final String sql = "SELECT ID, typeof(DATA), hex(DATA), typeof(LABEL), LABEL "
+            + "FROM BINARY_RECORD ORDER BY ID";
+        List<String> records = new ArrayList<>();
+        try (Connection conn = LiteORM.connect(); PreparedStatement ps = conn.prepareStatement(sql)) {
+            ResultSet rs = ps.executeQuery();
+            while (rs.next()) {
+                records.add(String.format("%s|%s|%s|%s|%s", rs.getLong(1), rs.getString(2),
+                    rs.getString(3), rs.getString(4), rs.getString(5)));
+            }
+        }
+        return records;
+    }
+
+    @Test
+    public void testLazyField() throws IOException {
+        destroy();
+        byte[] content = new byte[3 * 1024 * 1024 + 7];
+        new Random(42).nextBytes(content);
+        new Attachment("report.pdf", content).create();
+
+        Attachment a = new Attachment().findById(1);
+        assertEquals("report.pdf", a.getFileName());
+        assertNull(a.getContent());
+        assertNull(new Attachment().findAll().get(0).getContent());
+
+        // unloaded lazy fields are not overwritten by update()
+        a.setFileName("renamed.pdf");
+        a.update();
+        assertArrayEquals(content, a.loadLazy("content"));
+        assertArrayEquals(content, a.getContent());
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (InputStream in = new Attachment().findById(1).openLazyStream("content")) {
+            byte[] buffer = new byte[8192];
+            int n;
+            while ((n = in.read(buffer)) != -1) {
+                out.write(buffer, 0, n);
+            }
+        }
+        assertArrayEquals(content, out.toByteArray());
+        assertEquals("renamed.pdf", new Attachment().findById(1).getFileName());
+        destroy();
+    }
+
+    @Test
+    public void testLazyStreamDoesNotBlockWriters() throws IOException {
+        destroy();
+        // larger than a single chunk, so the writes land between chunks
+        byte[] original = new byte[16 * 1024 * 1024 + 1000];
+        Arrays.fill(original, (byte) 1);
+        new Attachment("report.pdf", original).create();
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (InputStream in = new Attachment().findById(1).openLazyStream("content")) {
+            out.write(in.read());
+            // would fail with SQLITE_BUSY if the stream held a read transaction
+            new Attachment("other.pdf", new byte[] {1}).create();
+            Attachment a = new Attachment().findById(1);
+            a.setFileName("renamed.pdf");
+            a.update();
+            byte[] buffer = new byte[8192];
+            int n;
+            while ((n = in.read(buffer)) != -1) {
+                out.write(buffer, 0, n);
+            }
+        }
+        assertArrayEquals(original, out.toByteArray());
+        destroy();
+    }
+
+    @Test
+    public void testLazyStreamDetectsConcurrentRewrite() throws IOException {
+        destroy();
+        byte[] original = new byte[16 * 1024 * 1024 + 1000];
+        byte[] replaced = new byte[original.length];
+        Arrays.fill(original, (byte) 1);
+        Arrays.fill(replaced, (byte) 2);
+        new Attachment("report.pdf", original).create();
+
+        try (InputStream in = new Attachment().findById(1).openLazyStream("content")) {
+            in.read();
+            Attachment a = new Attachment().findById(1);
+            a.setContent(replaced);
+            a.update();
+            byte[] buffer = new byte[8192];
+            try {
+                //noinspection StatementWithEmptyBody
+                while (in.read(buffer) != -1) { }
+                fail("Expected the rewrite to be detected");
+            } catch (IOException expected) {
+                // the stream must not mix bytes of both values
+            }
+        }
+        assertArrayEquals(replaced, new Attachment().findById(1).loadLazy("content"));
+        destroy();
+    }
+
+    @Test
+    public void testFindByIdSkipsLoadedLazyField() {
+        destroy();
+        new Attachment("report.pdf", new byte[] {1, 2, 3}).create();
+        Attachment a = new Attachment().findById(1);
+        a.loadLazy("content");
+        LiteORM.setSqlPrinting(true);
+        PrintStream stdout = System.out;
+        ByteArrayOutputStream printed = new ByteArrayOutputStream();
+        System.setOut(new PrintStream(printed));
+        try {
+            assertNull(a.findById(1).getContent());
+        } finally {
+            System.setOut(stdout);
+            LiteORM.setSqlPrinting(false);
+        }
+        for (String sql : printed.toString().split("\\R")) {
+            if (sql.startsWith("SELECT")) {
+                assertFalse(sql, sql.contains("CONTENT"));
+            }
+        }
+        assertTrue(printed.toString().contains("SELECT"));
+        destroy();
+    }
+
+    @Test
+    public void testUpdateWritesOnlyChangedLazyField() {
+        destroy();
+        new Attachment("report.pdf", new byte[] {1, 2, 3}).create();
+        Attachment a = new Attachment().findById(1);
+        a.loadLazy("content");
+        a.setFileName("renamed.pdf");
+        LiteORM.setSqlPrinting(true);
+        PrintStream stdout = System.out;
+        ByteArrayOutputStream printed = new ByteArrayOutputStream();
+        System.setOut(new PrintStream(printed));
+        try {
+            a.update();
+        } finally {
+            System.setOut(stdout);
+            LiteORM.setSqlPrinting(false);
+        }
+        assertTrue(printed.toString().contains("UPDATE"));
+        assertFalse(printed.toString().contains("CONTENT"));
+
+        a.setContent(null);
+        a.update();
+        Attachment found = new Attachment().findById(1);
+        assertEquals("renamed.pdf", found.getFileName());
+        assertNull(found.loadLazy("content"));
+        destroy();
+    }
+
+    private static final List<Path> SHARD_PATHS = Arrays.asList(Paths.get("LiteORM-shard-0.db"),
+        Paths.get("LiteORM-shard-1.db"), Paths.get("LiteORM-shard-2.db"));
+    private static final Path ENTITY_DB_PATH = Paths.get("LiteORM-entity-tests.db");
     private static final Path TEST_DB_PATH = Paths.get("LiteORM-tests.db");
 
 }